@@ -26,6 +26,7 @@
 package org.jivesoftware.openfire.plugin;
 
 import java.io.File;
+import java.util.Map;
 
 import org.jivesoftware.openfire.container.Plugin;
 import org.jivesoftware.openfire.container.PluginManager;
@@ -33,26 +34,45 @@ import org.jivesoftware.openfire.plugin.muninstats.BackgroundThread;
 import org.jivesoftware.openfire.plugin.muninstats.PacketMonitor;
 import org.jivesoftware.openfire.plugin.muninstats.StatusMonitor;
 import org.jivesoftware.util.JiveGlobals;
+import org.jivesoftware.util.PropertyEventDispatcher;
+import org.jivesoftware.util.PropertyEventListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * An Openfire Monitoring plugin. 
  * This plugin writes statistics data to a plain textfile from where it can 
- * be parsed by Munin or any other external monitoring tool. Statistics that 
+ * be parsed by Munin or any other external monitoring tool, as well as a 
+ * ready-made Munin multigraph document. Statistics that 
  * will be exported include: 
  *   - users (registered users, online users, online ressources) 
- *   - throughput (incoming and outgoing packets) 
+ *   - throughput (incoming and outgoing packets per second) 
  *   - memory (available, free and used memory) 
  *   - server2server connections
+ * 
+ * Changes to the plugin's system properties are applied while the plugin 
+ * is running, without resetting any statistics.
  */
-public class MuninStats implements Plugin {
+public class MuninStats implements Plugin, PropertyEventListener {
+	public static final String PROPERTY_STATUSLOGFILE = "plugin.muninstats.statuslogfile";
+	public static final String PROPERTY_MUNINFILE = "plugin.muninstats.muninfile";
+	public static final String PROPERTY_UPDATEINTERVAL = "plugin.muninstats.updateinterval";
+	public static final String PROPERTY_THROUGHPUT = "plugin.muninstats.throughput.enabled";
+	public static final String PROPERTY_S2S = "plugin.muninstats.s2s.enabled";
+
+	private static final String DEFAULT_STATUSLOGFILE = "/opt/openfire/resources/statistics/muninstats.log";
+	private static final String DEFAULT_MUNINFILE = "/opt/openfire/resources/statistics/muninstats.munin";
+	private static final int DEFAULT_UPDATEINTERVAL = 300;
+
 	private StatusMonitor statusMonitor;
 	private BackgroundThread backgroundThread;
 	private PacketMonitor packetMonitor;
 
 	private String statuslogfile;
+	private String muninfile;
 	private int updateinterval;
+	private boolean throughputEnabled;
+	private boolean s2sEnabled;
 
 	private static final Logger log = LoggerFactory.getLogger(MuninStats.class);
 
@@ -69,9 +89,12 @@ public class MuninStats implements Plugin {
 		backgroundThread.init(this);
 		backgroundThread.start();
 		statusMonitor = StatusMonitor.getInstance();
-		statusMonitor.init(statuslogfile, updateinterval);
+		statusMonitor.setServerToServerEnabled(s2sEnabled);
+		statusMonitor.setThroughputEnabled(throughputEnabled);
+		statusMonitor.init(statuslogfile, muninfile, updateinterval);
 		packetMonitor = PacketMonitor.getInstance();
 		packetMonitor.init(this);
+		PropertyEventDispatcher.addListener(this);
 		log.info("Plugin MuninStats initialized");
 	}
 
@@ -79,35 +102,129 @@ public class MuninStats implements Plugin {
 	 * destroy the plugin
 	 */
 	public void destroyPlugin() {
+		PropertyEventDispatcher.removeListener(this);
 		packetMonitor.destroy();
 		statusMonitor.destroy();
 		backgroundThread.stop();
 		log.info("Plugin MuninStats destroyed");
 	}
 
+	/**
+	 * check whether packet throughput should be monitored
+	 * 
+	 * @return true if the packet monitor should be registered
+	 */
+	public boolean isThroughputEnabled() {
+		return throughputEnabled;
+	}
+
 	/**
 	 * load settings
 	 */
 	private void initSettings() {
-		JiveGlobals.migrateProperty("plugin.muninstats.statuslogfile");
-		JiveGlobals.migrateProperty("plugin.muninstats.updateinterval");
+		JiveGlobals.migrateProperty(PROPERTY_STATUSLOGFILE);
+		JiveGlobals.migrateProperty(PROPERTY_MUNINFILE);
+		JiveGlobals.migrateProperty(PROPERTY_UPDATEINTERVAL);
+		JiveGlobals.migrateProperty(PROPERTY_THROUGHPUT);
+		JiveGlobals.migrateProperty(PROPERTY_S2S);
+
+		this.statuslogfile = parseFile(
+				JiveGlobals.getProperty(PROPERTY_STATUSLOGFILE), DEFAULT_STATUSLOGFILE);
+		this.muninfile = parseFile(
+				JiveGlobals.getProperty(PROPERTY_MUNINFILE), DEFAULT_MUNINFILE);
+		this.updateinterval = parseUpdateinterval(
+				JiveGlobals.getProperty(PROPERTY_UPDATEINTERVAL), DEFAULT_UPDATEINTERVAL);
+		this.throughputEnabled = parseEnabled(
+				JiveGlobals.getProperty(PROPERTY_THROUGHPUT));
+		this.s2sEnabled = parseEnabled(
+				JiveGlobals.getProperty(PROPERTY_S2S));
 
-		if (JiveGlobals.getProperty("plugin.muninstats.statuslogfile") == null) {
-			this.statuslogfile = "/opt/openfire/resources/statistics/muninstats.log";
+		log.info("Plugin MuninStats loaded properties:\n" +
+				"  statuslogfile : " + this.statuslogfile + "\n" +
+				"  muninfile     : " + this.muninfile + "\n" +
+				"  updateinterval: " + this.updateinterval + "s\n" +
+				"  throughput    : " + this.throughputEnabled + "\n" +
+				"  s2s           : " + this.s2sEnabled);
+	}
+
+	/**
+	 * apply a changed (or deleted, if value is null) property to the 
+	 * running monitors
+	 */
+	private synchronized void applyProperty(String property, String value) {
+		String applied;
+		if (PROPERTY_STATUSLOGFILE.equals(property)) {
+			statuslogfile = parseFile(value, DEFAULT_STATUSLOGFILE);
+			statusMonitor.setStatuslogfile(statuslogfile);
+			applied = statuslogfile;
+		} else if (PROPERTY_MUNINFILE.equals(property)) {
+			muninfile = parseFile(value, DEFAULT_MUNINFILE);
+			statusMonitor.setMuninfile(muninfile);
+			applied = muninfile;
+		} else if (PROPERTY_UPDATEINTERVAL.equals(property)) {
+			updateinterval = parseUpdateinterval(value, updateinterval);
+			statusMonitor.setUpdateinterval(updateinterval);
+			applied = updateinterval + "s";
+		} else if (PROPERTY_THROUGHPUT.equals(property)) {
+			throughputEnabled = parseEnabled(value);
+			statusMonitor.setThroughputEnabled(throughputEnabled);
+			packetMonitor.setEnabled(throughputEnabled);
+			applied = String.valueOf(throughputEnabled);
+		} else if (PROPERTY_S2S.equals(property)) {
+			s2sEnabled = parseEnabled(value);
+			statusMonitor.setServerToServerEnabled(s2sEnabled);
+			applied = String.valueOf(s2sEnabled);
 		} else {
-			this.statuslogfile = JiveGlobals
-					.getProperty("plugin.muninstats.statuslogfile");
+			return;
 		}
+		log.info("Plugin MuninStats applied property " + property + ": " + applied);
+	}
 
-		if (JiveGlobals.getProperty("plugin.muninstats.updateinterval") == null) {
-			this.updateinterval = 300;
-		} else {
-			this.updateinterval = Integer.parseInt(JiveGlobals
-					.getProperty("plugin.muninstats.updateinterval"));
+	private static String parseFile(String value, String defaultFile) {
+		if (value == null || value.trim().length() == 0) {
+			return defaultFile;
 		}
+		return value.trim();
+	}
 
-		log.info("Plugin MuninStats loaded properties:\n" +
-				"  statuslogfile : " + this.statuslogfile + "\n" +
-				"  updateinterval: " + this.updateinterval + "s");
+	private static int parseUpdateinterval(String value, int fallback) {
+		if (value == null) {
+			return DEFAULT_UPDATEINTERVAL;
+		}
+		try {
+			int interval = Integer.parseInt(value.trim());
+			if (interval > 0) {
+				return interval;
+			}
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		log.warn("Plugin MuninStats: Invalid updateinterval '" + value + 
+				"', keeping " + fallback + "s");
+		return fallback;
+	}
+
+	private static boolean parseEnabled(String value) {
+		if (value == null) {
+			return true;
+		}
+		return Boolean.parseBoolean(value.trim());
+	}
+
+	public void propertySet(String property, Map<String, Object> params) {
+		Object value = params.get("value");
+		applyProperty(property, value == null ? null : value.toString());
+	}
+
+	public void propertyDeleted(String property, Map<String, Object> params) {
+		applyProperty(property, null);
+	}
+
+	public void xmlPropertySet(String property, Map<String, Object> params) {
+		// plugin settings are stored as system properties only
+	}
+
+	public void xmlPropertyDeleted(String property, Map<String, Object> params) {
+		// plugin settings are stored as system properties only
 	}
 }
\ No newline at end of file
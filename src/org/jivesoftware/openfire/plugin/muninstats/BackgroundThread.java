@@ -41,12 +41,19 @@ public class BackgroundThread implements Runnable {
 	private long incrementalEventID;
 	private PriorityQueue<Event> eventQueue;
 
+	// the event being executed right now, and a reschedule requested for
+	// it while it was not in the queue (or -1)
+	private Event executingEvent;
+	private long executingEventDelay;
+
 	private static BackgroundThread instance = new BackgroundThread();
 
 	private BackgroundThread() {
 		running = false;
 		thread = null;
 		eventQueue = new PriorityQueue<Event>();
+		executingEvent = null;
+		executingEventDelay = -1;
 	}
 
 	public void init(MuninStats plugin) {
@@ -122,17 +129,26 @@ public class BackgroundThread implements Runnable {
 									.getExecutionTime())) {
 						// remove event from queue
 						eventQueue.poll();
+						event.lastExecutionTime = System.currentTimeMillis();
+						executingEvent = event;
 					} else {
 						event = null;
 					}
 				}
 
 				if (event != null) {
-					if (event.execute()) {
-						// event want's to be called again
-						synchronized (this) {
+					boolean again = event.execute();
+					synchronized (this) {
+						if (again) {
+							// event want's to be called again
+							if (executingEventDelay >= 0) {
+								event.executionTime = event.lastExecutionTime
+										+ executingEventDelay;
+							}
 							eventQueue.add(event);
 						}
+						executingEvent = null;
+						executingEventDelay = -1;
 					}
 					Thread.yield();
 				} else {
@@ -173,4 +189,35 @@ public class BackgroundThread implements Runnable {
 			eventQueue.remove(event);
 		}
 	}
+
+	/**
+	 * move an event to run delay milliseconds after it was last started 
+	 * (or immediately if that time has already passed). if the event is 
+	 * being executed right now, the new time is applied when it is added 
+	 * back to the queue.
+	 *
+	 * @param event
+	 * 		event to be rescheduled
+	 * @param delay
+	 * 		delay in milliseconds after the last execution start
+	 * @return true if the event was rescheduled, false if it is not part 
+	 * 		of the eventloop
+	 */
+	public boolean rescheduleEvent(Event event, long delay) {
+		if (event == null) {
+			throw new NullPointerException();
+		}
+		synchronized (this) {
+			if (event.equals(executingEvent)) {
+				executingEventDelay = delay;
+				return true;
+			}
+			if (!eventQueue.remove(event)) {
+				return false;
+			}
+			event.executionTime = event.lastExecutionTime + delay;
+			eventQueue.add(event);
+			return true;
+		}
+	}
 }
\ No newline at end of file
@@ -33,6 +33,7 @@ package org.jivesoftware.openfire.plugin.muninstats;
 public abstract class Event implements Comparable<Event> {
 	private long eventID;
 	protected long executionTime;
+	protected long lastExecutionTime;
 
 	/** 
 	 * create an event.
@@ -59,6 +60,14 @@ public abstract class Event implements Comparable<Event> {
 		return executionTime;
 	}
 
+	/**
+	 * get the time the event was last started by the BackgroundThread
+	 * @return lastExecutionTime, or 0 if it was never executed
+	 */
+	public long getLastExecutionTime() {
+		return lastExecutionTime;
+	}
+
 	/** 
 	 * compares two events by executionTime. 
 	 * if executionTime is equal, the objects are compared by eventID. 
@@ -38,6 +38,9 @@ import org.xmpp.packet.Packet;
 public class PacketMonitor implements PacketInterceptor {
 	private int packetsIn;
 	private int packetsOut;
+	private long countingSince;
+	private boolean enabled;
+	private final Object enabledLock = new Object();
 
 	private static PacketMonitor instance = new PacketMonitor();
 
@@ -49,14 +52,59 @@ public class PacketMonitor implements PacketInterceptor {
 	private PacketMonitor() {
 		packetsIn = 0;
 		packetsOut = 0;
+		countingSince = System.currentTimeMillis();
+		enabled = false;
 	}
 
 	public void init(MuninStats plugin) {
-		InterceptorManager.getInstance().addInterceptor(this);
+		setEnabled(plugin.isThroughputEnabled());
 	}
 
 	public void destroy() {
-		InterceptorManager.getInstance().removeInterceptor(this);
+		setEnabled(false);
+	}
+
+	/**
+	 * register or unregister the interceptor. the packet count restarts 
+	 * when counting is enabled, so the first export after re-enabling only 
+	 * covers the current interval. a separate lock is used so packet 
+	 * counting is never blocked.
+	 * 
+	 * @param enabled
+	 * 		true to count packets, false to stop counting
+	 */
+	public void setEnabled(boolean enabled) {
+		synchronized (enabledLock) {
+			if (this.enabled == enabled) {
+				return;
+			}
+			if (enabled) {
+				reset();
+				InterceptorManager.getInstance().addInterceptor(this);
+			} else {
+				InterceptorManager.getInstance().removeInterceptor(this);
+			}
+			this.enabled = enabled;
+		}
+	}
+
+	private synchronized void reset() {
+		packetsIn = 0;
+		packetsOut = 0;
+		countingSince = System.currentTimeMillis();
+	}
+
+	/**
+	 * get the time the packets were counted over since the last call (or 
+	 * since counting was enabled), and start a new period
+	 * 
+	 * @return period in milliseconds
+	 */
+	public synchronized long getMillisCounted() {
+		long now = System.currentTimeMillis();
+		long tmp = now - countingSince;
+		countingSince = now;
+		return tmp;
 	}
 
 	public synchronized int getPacketsIn() {
@@ -25,10 +25,13 @@
  */
 package org.jivesoftware.openfire.plugin.muninstats;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Collection;
+import java.util.Formatter;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Set;
@@ -41,12 +44,19 @@ import org.slf4j.LoggerFactory;
 
 /**
  * log status information this class collects information on registered users,
- * users online, ressources online, packets in and out and memory information.
- * the information is being written to a status logfile every INTERVAL_TIME
+ * users online, ressources online, packets per second in and out and memory 
+ * information.
+ * the information is being written to a status logfile every INTERVAL_TIME.
+ * additionally, a ready-made Munin multigraph document containing config and 
+ * values of all graphs is published to the muninfile, so a single read 
+ * serves every graph.
  */
 public class StatusMonitor {
-	private String statuslogfile;
-	private int updateinterval;
+	private volatile String statuslogfile;
+	private volatile String muninfile;
+	private volatile int updateinterval;
+	private volatile boolean throughputEnabled;
+	private volatile boolean s2sEnabled;
 	
 	private static final String LEGEND_UPDATE = "last_update";
 	private static final String LEGEND_REGISTERED = "users_registered";
@@ -60,22 +70,32 @@ public class StatusMonitor {
 	private static final String LEGEND_MEMUSED = "memory_used";
 	private static final String LEGEND_MEMFREE = "memory_free";
 
+	private static final String LEGEND_INTERVAL = "update_interval";
+	private static final String MUNIN_UNKNOWN = "U";
+
 	private EventLogStat event;
 	private UserManager userManager;
 	private SessionManager sessionManager;
 	private PacketMonitor packetMonitor;
 	private static final Logger log = LoggerFactory.getLogger(StatusMonitor.class);
 
-	private long lastUpdate;
+	private volatile long lastUpdate;
 	private double registeredUsers;
 	private double activeUsers;
 	private double activeUserSessions;
 	private double activeServerSessions;
+	private double packetsIn;
+	private double packetsOut;
 	private double maxMemory;
 	private double totalMemory;
 	private double freeMemory;
 	private double usedMemory;
 
+	private final StringBuilder statusBuffer = new StringBuilder(512);
+	private final Formatter statusFormatter = new Formatter(statusBuffer, Locale.ROOT);
+	private final StringBuilder muninBuffer = new StringBuilder(2048);
+	private final Formatter muninFormatter = new Formatter(muninBuffer, Locale.ROOT);
+
 	private static StatusMonitor instance = new StatusMonitor();
 
 	/**
@@ -88,13 +108,16 @@ public class StatusMonitor {
 	/**
 	 */
 	private StatusMonitor() {
+		throughputEnabled = true;
+		s2sEnabled = true;
 	}
 
 	/**
 	 * initialize and start status logger
 	 */
-	public void init(String statuslogfile, int updateinterval) {
+	public void init(String statuslogfile, String muninfile, int updateinterval) {
 		this.statuslogfile = statuslogfile;
+		this.muninfile = muninfile;
 		this.updateinterval = updateinterval;
 		
 		userManager = UserManager.getInstance();
@@ -106,6 +129,8 @@ public class StatusMonitor {
 		activeUsers = 0;
 		activeUserSessions = 0;
 		activeServerSessions = 0;
+		packetsIn = 0;
+		packetsOut = 0;
 		maxMemory = 0;
 		totalMemory = 0;
 		freeMemory = 0;
@@ -114,6 +139,10 @@ public class StatusMonitor {
 		updateUserStats();
 		updateMemStats();
 
+		// publish the graph definitions right away. lastUpdate is 0, so the
+		// munin script reports all values as unknown until the first update
+		logMunin(s2sEnabled, throughputEnabled);
+
 		BackgroundThread backgroundThread = BackgroundThread.getInstance();
 		long eventID = backgroundThread.getNewEventID();
 		event = new EventLogStat(eventID);
@@ -127,6 +156,49 @@ public class StatusMonitor {
 		BackgroundThread.getInstance().removeEvent(event);
 	}
 
+	/**
+	 * change the status logfile. the next update is written to the new file.
+	 */
+	public void setStatuslogfile(String statuslogfile) {
+		this.statuslogfile = statuslogfile;
+	}
+
+	/**
+	 * change the munin multigraph file. the next update is published to the
+	 * new file.
+	 */
+	public void setMuninfile(String muninfile) {
+		this.muninfile = muninfile;
+	}
+
+	/**
+	 * change the update interval. the pending update is moved so that it 
+	 * happens updateinterval seconds after the last one (or immediately if
+	 * that time has already passed). this also applies if an update is
+	 * running right now.
+	 */
+	public void setUpdateinterval(int updateinterval) {
+		this.updateinterval = updateinterval;
+		if (event != null) {
+			BackgroundThread.getInstance().rescheduleEvent(event,
+					updateinterval * 1000L);
+		}
+	}
+
+	/**
+	 * enable or disable exporting packet throughput
+	 */
+	public void setThroughputEnabled(boolean enabled) {
+		this.throughputEnabled = enabled;
+	}
+
+	/**
+	 * enable or disable exporting server2server connections
+	 */
+	public void setServerToServerEnabled(boolean enabled) {
+		this.s2sEnabled = enabled;
+	}
+
 	/**
 	 * update memory information
 	 */
@@ -168,31 +240,168 @@ public class StatusMonitor {
 	}
 
 	/**
-	 * log to status logfile
+	 * fetch and reset the packet counters. the counts are converted to 
+	 * packets per second, so the values don't depend on the update interval
 	 */
-	private void log() {
-		try {
-			FileOutputStream fstream = new FileOutputStream(this.statuslogfile);
-			PrintStream out = new PrintStream(fstream);
-			out.format("%s %d\n", LEGEND_UPDATE, lastUpdate);
-			out.format("%s %d\n", LEGEND_REGISTERED, (int) registeredUsers);
-			out.format("%s %d\n", LEGEND_ONLINE, (int) activeUsers);
-			out.format("%s %d\n", LEGEND_USESSIONS, (int) activeUserSessions);
+	private void updatePacketStats() {
+		double seconds = packetMonitor.getMillisCounted() / 1000.0;
+		packetsIn = packetMonitor.getPacketsIn();
+		packetsOut = packetMonitor.getPacketsOut();
+		if (seconds > 0) {
+			packetsIn /= seconds;
+			packetsOut /= seconds;
+		}
+	}
+
+	/**
+	 * render the status log into the reused buffer and write it to the
+	 * status logfile. the file is rewritten in place, so permissions and 
+	 * ownership set on it are kept.
+	 */
+	private void log(boolean s2s, boolean throughput) {
+		// read the location once, so a concurrent change of the setting
+		// never splits an update across two files
+		String statuslogfile = this.statuslogfile;
+		statusBuffer.setLength(0);
+		Formatter out = statusFormatter;
+
+		out.format("%s %d\n", LEGEND_UPDATE, lastUpdate);
+		out.format("%s %d\n", LEGEND_REGISTERED, (int) registeredUsers);
+		out.format("%s %d\n", LEGEND_ONLINE, (int) activeUsers);
+		out.format("%s %d\n", LEGEND_USESSIONS, (int) activeUserSessions);
+		if (s2s) {
 			out.format("%s %d\n", LEGEND_SSESSIONS, (int) activeServerSessions);
-			out.format("%s %d\n", LEGEND_INCOMING,
-					(int) packetMonitor.getPacketsIn());
-			out.format("%s %d\n", LEGEND_OUTGOING,
-					(int) packetMonitor.getPacketsOut());
-			out.format(Locale.ROOT, "%s %.3f\n", LEGEND_MEMMAX, maxMemory);
-			out.format(Locale.ROOT, "%s %.3f\n", LEGEND_MEMTOTAL, totalMemory);
-			out.format(Locale.ROOT, "%s %.3f\n", LEGEND_MEMUSED, usedMemory);
-			out.format(Locale.ROOT, "%s %.3f\n", LEGEND_MEMFREE, freeMemory);
-			out.close();
+		}
+		if (throughput) {
+			out.format("%s %.3f\n", LEGEND_INCOMING, packetsIn);
+			out.format("%s %.3f\n", LEGEND_OUTGOING, packetsOut);
+		}
+		out.format("%s %.3f\n", LEGEND_MEMMAX, maxMemory);
+		out.format("%s %.3f\n", LEGEND_MEMTOTAL, totalMemory);
+		out.format("%s %.3f\n", LEGEND_MEMUSED, usedMemory);
+		out.format("%s %.3f\n", LEGEND_MEMFREE, freeMemory);
+
+		try {
+			write(statusBuffer, new File(statuslogfile));
 		} catch (IOException e) {
 			log.error("Plugin MuninStats: Error writing to statuslogfile\n" + e.toString());
 		}
 	}
 
+	/**
+	 * render the munin multigraph document into the reused buffer and 
+	 * publish it to the muninfile. values of disabled collectors are 
+	 * reported as unknown.
+	 */
+	private void logMunin(boolean s2s, boolean throughput) {
+		String muninfile = this.muninfile;
+		muninBuffer.setLength(0);
+		Formatter out = muninFormatter;
+
+		// comment lines, ignored by munin. used by the munin script to
+		// report all values as unknown if the document is outdated
+		out.format("# %s %d\n", LEGEND_UPDATE, lastUpdate);
+		out.format("# %s %d\n", LEGEND_INTERVAL, updateinterval);
+
+		out.format("multigraph openfire_users\n");
+		out.format("graph_title Openfire users\n");
+		out.format("graph_vlabel Number of Users\n");
+		out.format("graph_category openfire\n");
+		out.format("graph_args --base 1000 -l 0\n");
+		out.format("%s.label User Online\n", LEGEND_ONLINE);
+		out.format("%s.draw AREA\n", LEGEND_ONLINE);
+		out.format("%s.label Ressources Online\n", LEGEND_USESSIONS);
+		out.format("%s.draw AREA\n", LEGEND_USESSIONS);
+		out.format("%s.label Users Registered\n", LEGEND_REGISTERED);
+		out.format("%s.value %d\n", LEGEND_REGISTERED, (int) registeredUsers);
+		out.format("%s.value %d\n", LEGEND_ONLINE, (int) activeUsers);
+		out.format("%s.value %d\n", LEGEND_USESSIONS, (int) activeUserSessions);
+
+		out.format("multigraph openfire_memory\n");
+		out.format("graph_title Openfire memory\n");
+		out.format("graph_vlabel Memory usage\n");
+		out.format("graph_category openfire\n");
+		out.format("graph_args --base 1000 -l 0\n");
+		out.format("%s.label Memory max\n", LEGEND_MEMMAX);
+		out.format("%s.label Memory available\n", LEGEND_MEMTOTAL);
+		out.format("%s.label Memory used\n", LEGEND_MEMUSED);
+		out.format("%s.draw AREA\n", LEGEND_MEMUSED);
+		out.format("%s.label Memory free\n", LEGEND_MEMFREE);
+		out.format("%s.draw STACK\n", LEGEND_MEMFREE);
+		out.format("%s.value %.3f\n", LEGEND_MEMMAX, maxMemory);
+		out.format("%s.value %.3f\n", LEGEND_MEMTOTAL, totalMemory);
+		out.format("%s.value %.3f\n", LEGEND_MEMUSED, usedMemory);
+		out.format("%s.value %.3f\n", LEGEND_MEMFREE, freeMemory);
+
+		out.format("multigraph openfire_throughput\n");
+		out.format("graph_title Openfire throughput\n");
+		out.format("graph_vlabel Packets per second in (-) / out (+)\n");
+		out.format("graph_category openfire\n");
+		out.format("graph_args --base 1000 -l 0\n");
+		out.format("%s.label Packets\n", LEGEND_OUTGOING);
+		out.format("%s.graph no\n", LEGEND_INCOMING);
+		out.format("%s.negative %s\n", LEGEND_OUTGOING, LEGEND_INCOMING);
+		if (throughput) {
+			out.format("%s.value %.3f\n", LEGEND_INCOMING, packetsIn);
+			out.format("%s.value %.3f\n", LEGEND_OUTGOING, packetsOut);
+		} else {
+			out.format("%s.value %s\n", LEGEND_INCOMING, MUNIN_UNKNOWN);
+			out.format("%s.value %s\n", LEGEND_OUTGOING, MUNIN_UNKNOWN);
+		}
+
+		out.format("multigraph openfire_s2s\n");
+		out.format("graph_title Openfire server2server connections\n");
+		out.format("graph_vlabel Number of connections\n");
+		out.format("graph_category openfire\n");
+		out.format("graph_args --base 1000 -l 0\n");
+		out.format("%s.label Connections\n", LEGEND_SSESSIONS);
+		if (s2s) {
+			out.format("%s.value %d\n", LEGEND_SSESSIONS, (int) activeServerSessions);
+		} else {
+			out.format("%s.value %s\n", LEGEND_SSESSIONS, MUNIN_UNKNOWN);
+		}
+
+		try {
+			publish(muninBuffer, muninfile);
+		} catch (IOException e) {
+			log.error("Plugin MuninStats: Error writing to muninfile\n" + e.toString());
+		}
+	}
+
+	/**
+	 * write content to a temporary file next to the target and rename it 
+	 * to the target, so readers never see a partially written file. if 
+	 * that is not possible (directory not writable, or a platform where 
+	 * renaming does not replace an existing file), the target is rewritten 
+	 * in place instead. that is not atomic, but keeps the file updated.
+	 */
+	private static void publish(CharSequence content, String file) throws IOException {
+		File target = new File(file);
+		File tmp = new File(file + ".tmp");
+		try {
+			write(content, tmp);
+			if (tmp.renameTo(target)) {
+				return;
+			}
+		} catch (IOException e) {
+			// fall back to writing in place
+		}
+		tmp.delete();
+		write(content, target);
+	}
+
+	/**
+	 * write content to a file, replacing its previous content
+	 */
+	private static void write(CharSequence content, File file) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "US-ASCII");
+		try {
+			out.append(content);
+		} finally {
+			out.close();
+		}
+	}
+
 	/**
 	 * loop the status logger in background
 	 */
@@ -202,13 +411,24 @@ public class StatusMonitor {
 		}
 
 		public boolean execute() {
+			// read the settings once, so both outputs of this update agree
+			// and never publish values that were not collected now
+			boolean s2s = s2sEnabled;
+			boolean throughput = throughputEnabled;
+
 			updateUserStats();
 			updateMemStats();
-			updateServerToServerStats();
+			if (s2s) {
+				updateServerToServerStats();
+			}
+			if (throughput) {
+				updatePacketStats();
+			}
 			lastUpdate = System.currentTimeMillis() / 1000L;
-			log();
+			log(s2s, throughput);
+			logMunin(s2s, throughput);
 
-			executionTime = System.currentTimeMillis() + updateinterval * 1000;
+			executionTime = System.currentTimeMillis() + updateinterval * 1000L;
 			return true;
 		}
 	}